@@ -1,5 +1,6 @@
 plugins {
     id("application")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.kousenit"
@@ -34,6 +35,11 @@ tasks.test {
     useJUnitPlatform()
 }
 
+jmh {
+    // Report allocation rates alongside timings
+    profilers = listOf("gc")
+}
+
 application {
     mainClass.set("com.kousenit.AllTogether")
 }
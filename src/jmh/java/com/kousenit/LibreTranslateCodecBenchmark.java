@@ -0,0 +1,95 @@
+package com.kousenit;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static com.kousenit.LibreTranslateService.TranslateRequest;
+import static com.kousenit.LibreTranslateService.TranslateResponse;
+
+/**
+ * Compares the previous Gson round trip (String body in and out, reflective
+ * binding) with {@link LibreTranslateCodec}. Run with {@code ./gradlew jmh};
+ * the gc profiler is enabled in the build so allocation rates are reported too.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibreTranslateCodecBenchmark {
+
+    @Param({"64", "1024", "16384"})
+    private int textLength;
+
+    private final Gson gson = new Gson();
+    private final LibreTranslateCodec codec = new LibreTranslateCodec();
+
+    private TranslateRequest request;
+    private byte[] responseBytes;
+
+    @Setup
+    public void setUp() {
+        String sentence = "Grüße aus Köln, wie geht's? \"Gut\", danke.\n";
+        String text = sentence.repeat(textLength / sentence.length() + 1).substring(0, textLength);
+        request = new TranslateRequest("en", "de", text);
+        responseBytes = gson.toJson(new TranslateResponse(text)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Both encode benchmarks subscribe to the body publisher, since that is where
+    // the HTTP client gets its bytes and where ofString/ofByteArray make their copies
+    @Benchmark
+    public void gsonEncode(Blackhole blackhole) {
+        drain(HttpRequest.BodyPublishers.ofString(gson.toJson(request)), blackhole);
+    }
+
+    @Benchmark
+    public void codecEncode(Blackhole blackhole) {
+        try (var buffer = codec.encode(request)) {
+            drain(buffer.publisher(), blackhole);
+        }
+    }
+
+    @Benchmark
+    public String gsonDecode() {
+        String body = new String(responseBytes, StandardCharsets.UTF_8);
+        return gson.fromJson(body, TranslateResponse.class).translatedText();
+    }
+
+    @Benchmark
+    public String codecDecode() throws IOException {
+        return codec.decode(new ByteArrayInputStream(responseBytes));
+    }
+
+    private static void drain(HttpRequest.BodyPublisher publisher, Blackhole blackhole) {
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer item) {
+                blackhole.consume(item);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                throw new IllegalStateException(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+    }
+}
@@ -2,17 +2,21 @@ package com.kousenit;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executors;
+import java.util.Optional;
+import java.util.concurrent.*;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+import static com.kousenit.DeadlineController.Degradation;
+import static com.kousenit.DeadlineController.Stage;
 import static com.kousenit.LibreTranslateService.TranslateRequest;
 
 public class AllTogether {
     private static final Logger logger = Logger.getLogger(AllTogether.class.getName());
+    private static final Duration DEFAULT_LATENCY_BUDGET = Duration.ofSeconds(60);
 
     private final AudioRecorder recorder = new AudioRecorder();
     private final AssemblyAITranscribeService assemblyAITranscribe = new AssemblyAITranscribeService();
@@ -20,20 +24,43 @@ public class AllTogether {
     private final ElevenLabsService elevenLabs = new ElevenLabsService();
 
     public void run(List<String> languageCodes) throws IOException {
+        run(languageCodes, DEFAULT_LATENCY_BUDGET);
+    }
+
+    /**
+     * Runs the pipeline within {@code latencyBudget}, counted from the end of the
+     * recording. Language codes are in priority order: when the budget is at risk,
+     * the last ones are dropped first.
+     *
+     * @return the degradations applied to stay within the budget
+     */
+    public List<Degradation> run(List<String> languageCodes, Duration latencyBudget) throws IOException {
         // Record audio
         CompletableFuture<InputStream> recordingFuture = recordAudio();
+        var deadline = new DeadlineController(new LatencyBudget(latencyBudget));
+        logger.info("Latency budget: %dms".formatted(latencyBudget.toMillis()));
 
         // Transcribe audio
-        String transcribedText = transcribeAudio(recordingFuture);
+        Optional<String> transcription = transcribeAudio(recordingFuture, deadline);
+        if (transcription.isEmpty()) {
+            logger.severe("Transcription cancelled: latency budget exceeded. Exiting...");
+            return deadline.degradations();
+        }
+        String transcribedText = transcription.get();
         if (transcribedText.isBlank()) {
             logger.severe("No text transcribed. Exiting...");
-            return;
+            return deadline.degradations();
         }
         logger.info("Transcription successful. Text: " + transcribedText);
+        deadline.checkpoint(Stage.TRANSCRIPTION);
 
         // Translate and generate speech
-        translateAndGenerateSpeech(languageCodes, transcribedText);
-        logger.info("All processing completed successfully");
+        translateAndGenerateSpeech(languageCodes, transcribedText, deadline);
+
+        List<Degradation> degradations = deadline.degradations();
+        logger.info("All processing completed in %dms of %dms budget with %d degradation(s)".formatted(
+                deadline.budget().elapsed().toMillis(), latencyBudget.toMillis(), degradations.size()));
+        return degradations;
     }
 
     @SuppressWarnings("ResultOfMethodCallIgnored")
@@ -48,86 +75,157 @@ public class AllTogether {
         return recordingFuture;
     }
 
-    private String transcribeAudio(CompletableFuture<InputStream> recordingFuture) {
+    /**
+     * @return the transcript, or empty if transcription was cancelled for missing its deadline
+     */
+    private Optional<String> transcribeAudio(CompletableFuture<InputStream> recordingFuture,
+                                             DeadlineController deadline) {
+        long stageDeadline = deadlineNanos(deadline.timeoutFor(Stage.TRANSCRIPTION));
+        // Not try-with-resources: close() would wait for a cancelled call still blocked in I/O
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        Future<String> transcription = executor.submit(
+                () -> assemblyAITranscribe.transcribe(recordingFuture.join()).orElseThrow());
         try {
-            InputStream audioStream = recordingFuture.join();
-            String result = assemblyAITranscribe.transcribe(audioStream).orElseThrow();
+            String result = await(transcription, stageDeadline);
             logger.info("Transcription completed successfully");
             System.out.println("Transcription: " + result);
-            return result;
-        } catch (IOException e) {
-            logger.severe("Error during transcription: " + e.getMessage());
-            throw new RuntimeException("Transcription failed", e);
+            return Optional.of(result);
+        } catch (TimeoutException e) {
+            transcription.cancel(true);
+            deadline.reportCancelled(Stage.TRANSCRIPTION, "transcription");
+            return Optional.empty();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                logger.severe("Error during transcription: " + ioException.getMessage());
+                throw new RuntimeException("Transcription failed", ioException);
+            }
+            logger.fine("Unexpected error during transcription: " + e.getCause().getMessage());
+            throw new RuntimeException("Unexpected error during transcription", e.getCause());
         } catch (Exception e) {
             logger.fine("Unexpected error during transcription: " + e.getMessage());
             throw new RuntimeException("Unexpected error during transcription", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
-    private void translateAndGenerateSpeech(List<String> languages, String transcribedText) {
+    private void translateAndGenerateSpeech(List<String> languages, String transcribedText,
+                                            DeadlineController deadline) {
+        Map<String, String> translations = translate(languages, transcribedText, deadline);
+        deadline.checkpoint(Stage.TRANSLATION);
+        generateSpeech(translations, deadline);
+    }
+
+    private Map<String, String> translate(List<String> languages, String transcribedText,
+                                          DeadlineController deadline) {
+        List<String> selectedLanguages = deadline.selectLanguages(Stage.TRANSLATION, languages);
+        Duration timeout = deadline.timeoutFor(Stage.TRANSLATION);
+        if (timeout.isZero()) {
+            deadline.reportCancelled(Stage.TRANSLATION, "all translations");
+            return Map.of();
+        }
+        long stageDeadline = deadlineNanos(timeout);
+
         // Perform translations in parallel
-        Map<String, String> translations;
-        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
             var start = System.currentTimeMillis();
-            logger.info("Starting parallel translations for %d languages".formatted(languages.size()));
-
-            Map<String, CompletableFuture<String>> translationFutures = languages.stream()
-                    .collect(Collectors.toMap(
-                            language -> language,
-                            language -> CompletableFuture.supplyAsync(
-                                    () -> {
-                                        logger.fine("Starting translation for language: " + language);
-                                        return libreTranslate.translate(
-                                                new TranslateRequest("en", language, transcribedText));
-                                    },
-                                    executor)
-                    ));
-
-            translations = translationFutures.entrySet().stream()
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            entry -> {
-                                try {
-                                    String result = entry.getValue().join();
-                                    System.out.printf("Translation for %s: %s%n", entry.getKey(), result);
-                                    return result;
-                                } catch (Exception e) {
-                                    logger.severe("Translation failed for language " + entry.getKey() +
-                                ": " + e.getMessage());
-                                    throw e;
-                                }
-                            }
-                    ));
+            logger.info("Starting parallel translations for %d languages".formatted(selectedLanguages.size()));
+
+            Map<String, Future<String>> translationFutures = new LinkedHashMap<>();
+            for (String language : selectedLanguages) {
+                translationFutures.put(language, executor.submit(() -> {
+                    logger.fine("Starting translation for language: " + language);
+                    return libreTranslate.translate(new TranslateRequest("en", language, transcribedText));
+                }));
+            }
+
+            Map<String, String> translations = new LinkedHashMap<>();
+            for (var entry : translationFutures.entrySet()) {
+                try {
+                    String result = await(entry.getValue(), stageDeadline);
+                    System.out.printf("Translation for %s: %s%n", entry.getKey(), result);
+                    translations.put(entry.getKey(), result);
+                } catch (TimeoutException e) {
+                    entry.getValue().cancel(true);
+                    deadline.reportCancelled(Stage.TRANSLATION, "translation for " + entry.getKey());
+                } catch (ExecutionException e) {
+                    logger.severe("Translation failed for language " + entry.getKey() +
+                            ": " + e.getCause().getMessage());
+                    throw e;
+                }
+            }
 
             var end = System.currentTimeMillis();
             logger.info("All translations completed in %dms".formatted(end - start));
+            return translations;
         } catch (Exception e) {
             logger.severe("Error during translation phase: " + e.getMessage());
             throw new RuntimeException(e);
+        } finally {
+            executor.shutdownNow();
         }
+    }
+
+    private void generateSpeech(Map<String, String> translations, DeadlineController deadline) {
+        List<String> selectedLanguages = deadline.selectLanguages(Stage.SPEECH, List.copyOf(translations.keySet()));
+        Duration timeout = deadline.timeoutFor(Stage.SPEECH);
+        if (timeout.isZero()) {
+            deadline.reportCancelled(Stage.SPEECH, "all speech generation");
+            return;
+        }
+        long stageDeadline = deadlineNanos(timeout);
 
-        // Generate speech sequentially using the completed translations
-        // Use a thread pool of size 5 because that's our current limit on the subscription
-        try (var speechExecutor = Executors.newFixedThreadPool(5)) {
+        // Use a thread pool of size 5 because that's our current limit on the subscription.
+        // Daemon threads, so a cancelled request still unwinding cannot keep the JVM alive.
+        ExecutorService speechExecutor = Executors.newFixedThreadPool(5, Thread.ofPlatform().daemon().factory());
+        try {
             var start = System.currentTimeMillis();
-            logger.info("Starting parallel speech generation for " + translations.size() + " languages");
-
-            List<CompletableFuture<Void>> speechFutures = translations.entrySet().stream()
-                    .map(entry -> CompletableFuture.runAsync(() -> {
-                        try {
-                            String fileName = "translated_audio_" + entry.getKey();
-                            logger.info("Generating speech for language: %s".formatted(entry.getKey()));
-                            elevenLabs.generateSpeech(entry.getValue(), fileName);
-                            logger.info("Successfully generated speech for language: " + entry.getKey());
-                        } catch (Exception e) {
-                            logger.severe("Error generating speech for language %s: %s".formatted(entry.getKey(), e.getMessage()));
-                            throw e;
+            logger.info("Starting parallel speech generation for " + selectedLanguages.size() + " languages");
+
+            Map<String, SpeechTask> speechTasks = new LinkedHashMap<>();
+            for (String language : selectedLanguages) {
+                var cancellation = new ElevenLabsService.Cancellation();
+                Future<?> future = speechExecutor.submit(() -> {
+                    try {
+                        String fileName = "translated_audio_" + language;
+                        logger.info("Generating speech for language: %s".formatted(language));
+                        elevenLabs.generateSpeech(translations.get(language), fileName,
+                                deadline.speechSettings(language), cancellation);
+                        logger.info("Successfully generated speech for language: " + language);
+                    } catch (Exception e) {
+                        if (cancellation.isCancelled()) {
+                            return;
                         }
-                    }, speechExecutor))
-                    .toList();
+                        logger.severe("Error generating speech for language %s: %s".formatted(language, e.getMessage()));
+                        throw e;
+                    }
+                });
+                speechTasks.put(language, new SpeechTask(future, cancellation));
+            }
 
-            // Wait for all speech generation to complete
-            CompletableFuture.allOf(speechFutures.toArray(new CompletableFuture[0])).join();
+            // Wait for every language, cancelling only what misses the deadline. A failure in one
+            // language is rethrown after the others have finished writing their files.
+            ExecutionException failure = null;
+            for (var entry : speechTasks.entrySet()) {
+                try {
+                    await(entry.getValue().future(), stageDeadline);
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                } catch (TimeoutException e) {
+                    // A task that already wrote its file cannot be cancelled and is not reported
+                    if (entry.getValue().cancellation().cancel()) {
+                        entry.getValue().future().cancel(true);
+                        deadline.reportCancelled(Stage.SPEECH, "speech generation for " + entry.getKey());
+                    }
+                }
+            }
+
+            if (failure != null) {
+                throw failure;
+            }
 
             var end = System.currentTimeMillis();
             logger.info("All speech generation completed in %dms".formatted(end - start));
@@ -135,9 +233,23 @@ public class AllTogether {
         } catch (Exception e) {
             logger.severe("Error during speech generation phase: " + e.getMessage());
             throw new RuntimeException("Speech generation failed", e);
+        } finally {
+            speechExecutor.shutdownNow();
         }
     }
 
+    private record SpeechTask(Future<?> future, ElevenLabsService.Cancellation cancellation) {}
+
+    private static long deadlineNanos(Duration timeout) {
+        return System.nanoTime() + timeout.toNanos();
+    }
+
+    // Callers cancel the task themselves when the deadline passes
+    private static <T> T await(Future<T> future, long deadlineNanos)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
     public static void main(String[] args) throws IOException {
         new AllTogether().run(List.of("en", "hi", "de", "fr"));
     }
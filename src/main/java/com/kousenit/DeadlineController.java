@@ -0,0 +1,166 @@
+package com.kousenit;
+
+import net.andrewcpu.elevenlabs.enums.ElevenLabsVoiceModel;
+import net.andrewcpu.elevenlabs.enums.StreamLatencyOptimization;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+import static com.kousenit.ElevenLabsService.SpeechSettings;
+
+/**
+ * Tracks a session's {@link LatencyBudget} across the pipeline stages and decides
+ * how much quality later stages give up when earlier ones run long.
+ * <p>
+ * Each stage is planned to use a share of the budget. After a stage completes,
+ * the time actually spent is compared with the plan and the mode is degraded
+ * (never upgraded) accordingly. Every decision is logged and kept as a
+ * {@link Degradation} so the caller can report it.
+ */
+public class DeadlineController {
+    private static final Logger logger = Logger.getLogger(DeadlineController.class.getName());
+
+    // Ratio of actual to planned elapsed time that triggers each mode
+    private static final double FAST_PRESSURE = 1.0;
+    private static final double FASTEST_PRESSURE = 1.5;
+
+    // Fraction of their planned share that later stages need even in the fastest mode
+    private static final double MIN_RESERVE_FACTOR = 0.5;
+
+    public enum Stage {
+        TRANSCRIPTION(0.3),
+        TRANSLATION(0.2),
+        SPEECH(0.5);
+
+        private final double share;
+
+        Stage(double share) {
+            this.share = share;
+        }
+    }
+
+    public enum Mode {
+        FULL_QUALITY("multilingual model, no latency optimization"),
+        FAST("turbo model for English, strong latency optimization"),
+        FASTEST("turbo model for English, maximum latency optimization, low-priority languages skipped");
+
+        private final String description;
+
+        Mode(String description) {
+            this.description = description;
+        }
+    }
+
+    public record Degradation(Stage stage, String decision, Duration elapsed, Duration remaining) {}
+
+    private final LatencyBudget budget;
+    private final List<Degradation> degradations = new CopyOnWriteArrayList<>();
+    private volatile Mode mode = Mode.FULL_QUALITY;
+    private volatile boolean languagesTrimmed = false;
+
+    public DeadlineController(LatencyBudget budget) {
+        this.budget = budget;
+    }
+
+    public LatencyBudget budget() {
+        return budget;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    public List<Degradation> degradations() {
+        return List.copyOf(degradations);
+    }
+
+    /**
+     * Re-evaluates the mode once {@code completed} has finished.
+     */
+    public Mode checkpoint(Stage completed) {
+        long plannedNanos = (long) (budget.total().toNanos() * cumulativeShare(completed));
+        double pressure = (double) budget.elapsed().toNanos() / plannedNanos;
+
+        Mode next;
+        if (pressure > FASTEST_PRESSURE || budget.isExpired()) {
+            next = Mode.FASTEST;
+        } else if (pressure > FAST_PRESSURE) {
+            next = Mode.FAST;
+        } else {
+            next = Mode.FULL_QUALITY;
+        }
+
+        if (next.compareTo(mode) > 0) {
+            mode = next;
+            report(completed, "Used %d%% of planned time; switching to %s (%s)".formatted(
+                    Math.round(pressure * 100), next, next.description));
+        }
+        return mode;
+    }
+
+    /**
+     * How long {@code stage} may run, leaving enough for the stages after it
+     * to finish in the fastest mode. Zero means the stage should not start.
+     */
+    public Duration timeoutFor(Stage stage) {
+        double laterShare = 1.0 - cumulativeShare(stage);
+        Duration reserve = Duration.ofNanos((long) (budget.total().toNanos() * laterShare * MIN_RESERVE_FACTOR));
+        Duration timeout = budget.remaining().minus(reserve);
+        return timeout.isNegative() ? Duration.ZERO : timeout;
+    }
+
+    /**
+     * Languages are in priority order. In the fastest mode the lower-priority
+     * half is dropped, once per session.
+     */
+    public List<String> selectLanguages(Stage stage, List<String> languages) {
+        if (mode != Mode.FASTEST || languagesTrimmed || languages.size() <= 1) {
+            return languages;
+        }
+        languagesTrimmed = true;
+
+        int keep = (languages.size() + 1) / 2;
+        report(stage, "Skipping low-priority languages " + languages.subList(keep, languages.size()));
+        return List.copyOf(languages.subList(0, keep));
+    }
+
+    public SpeechSettings speechSettings(String language) {
+        return switch (mode) {
+            case FULL_QUALITY -> SpeechSettings.FULL_QUALITY;
+            case FAST -> new SpeechSettings(fastestModel(language), StreamLatencyOptimization.STRONG);
+            case FASTEST -> new SpeechSettings(fastestModel(language),
+                    StreamLatencyOptimization.MAX_NO_TEXT_NORMALIZATION);
+        };
+    }
+
+    public void reportCancelled(Stage stage, String work) {
+        report(stage, "Cancelled %s: could not finish within the latency budget".formatted(work));
+    }
+
+    private void report(Stage stage, String decision) {
+        var degradation = new Degradation(stage, decision, budget.elapsed(), budget.remaining());
+        degradations.add(degradation);
+        logger.warning("[%s] %s (elapsed %dms, remaining %dms)".formatted(
+                stage, decision, degradation.elapsed().toMillis(), degradation.remaining().toMillis()));
+    }
+
+    // Turbo v2 only speaks English, so other languages stay on the multilingual model
+    private static ElevenLabsVoiceModel fastestModel(String language) {
+        return "en".equals(language)
+                ? ElevenLabsVoiceModel.ELEVEN_TURBO_V2
+                : ElevenLabsVoiceModel.ELEVEN_MULTILINGUAL_V2;
+    }
+
+    private static double cumulativeShare(Stage stage) {
+        double share = 0;
+        for (Stage s : Stage.values()) {
+            share += s.share;
+            if (s == stage) {
+                break;
+            }
+        }
+        return share;
+    }
+}
@@ -5,21 +5,73 @@ import net.andrewcpu.elevenlabs.builders.SpeechGenerationBuilder;
 import net.andrewcpu.elevenlabs.enums.ElevenLabsVoiceModel;
 import net.andrewcpu.elevenlabs.enums.StreamLatencyOptimization;
 import net.andrewcpu.elevenlabs.model.voice.Voice;
+import org.apache.hc.core5.http.io.EofSensorInputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 public class ElevenLabsService {
-    private final Logger logger = Logger.getLogger(ElevenLabsService.class.getName());
+    private static final Logger logger = Logger.getLogger(ElevenLabsService.class.getName());
     private static final String VOICE_ID = "CXJAacovzWn9Fp4Rcjcs";
 
+    public record SpeechSettings(ElevenLabsVoiceModel model, StreamLatencyOptimization latencyOptimization) {
+        public static final SpeechSettings FULL_QUALITY = new SpeechSettings(
+                ElevenLabsVoiceModel.ELEVEN_MULTILINGUAL_V2, StreamLatencyOptimization.NONE);
+    }
+
+    /**
+     * Lets another thread cancel a {@code generateSpeech} call. Cancelling drops
+     * the connection of a response that is already streaming, and a cancelled
+     * call never writes its output file.
+     */
+    public static final class Cancellation {
+        private enum State { RUNNING, CANCELLED, COMPLETED }
+
+        private final AtomicReference<State> state = new AtomicReference<>(State.RUNNING);
+        private volatile InputStream activeStream;
+
+        /**
+         * @return false if the call had already completed and written its file
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(State.RUNNING, State.CANCELLED)) {
+                return state.get() == State.CANCELLED;
+            }
+            abort(activeStream);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == State.CANCELLED;
+        }
+
+        private void attach(InputStream stream) {
+            activeStream = stream;
+            // Covers a cancel that arrived while the request was still waiting for its response
+            if (isCancelled()) {
+                abort(stream);
+            }
+        }
+
+        // Package-private for tests
+        boolean complete() {
+            return state.compareAndSet(State.RUNNING, State.COMPLETED);
+        }
+    }
+
     public ElevenLabsService() {
         String apiKey = System.getenv("ELEVENLABS_API_KEY");
         if (apiKey == null || apiKey.isBlank()) {
@@ -29,7 +81,11 @@ public class ElevenLabsService {
     }
 
     public void generateSpeech(String text, String fileName) {
-        logger.info("Starting speech generation for file: %s".formatted(fileName));
+        generateSpeech(text, fileName, SpeechSettings.FULL_QUALITY, new Cancellation());
+    }
+
+    public void generateSpeech(String text, String fileName, SpeechSettings settings, Cancellation cancellation) {
+        logger.info("Starting speech generation for file: %s with %s".formatted(fileName, settings));
         Instant start = Instant.now();
 
         try {
@@ -40,28 +96,108 @@ public class ElevenLabsService {
             Path outputPath = outputDir.resolve(fileName + ".mp3");
 
             // Get the input stream with streamed audio
-            try (InputStream inputStream = SpeechGenerationBuilder.textToSpeech()
+            streamToFile(() -> SpeechGenerationBuilder.textToSpeech()
                     .streamed()
                     .setText(text)
                     .setVoice(Voice.getVoice(VOICE_ID))
-                    .setModel(ElevenLabsVoiceModel.ELEVEN_MULTILINGUAL_V2)
-                    .setLatencyOptimization(StreamLatencyOptimization.NONE)
-                    .build()) {
-
-                // Copy the stream to the file
-                Files.copy(inputStream, outputPath, StandardCopyOption.REPLACE_EXISTING);
-            }
+                    .setModel(settings.model())
+                    .setLatencyOptimization(settings.latencyOptimization())
+                    .build(), outputPath, cancellation);
 
             Duration duration = Duration.between(start, Instant.now());
             logger.info("Successfully generated speech file: %s in %d seconds".formatted(
                     fileName, duration.toSeconds()));
 
-        } catch (IOException e) {
-            logger.severe("Failed to generate speech for file: %s".formatted(fileName));
-            throw new RuntimeException("Failed to generate speech: " + e.getMessage(), e);
         } catch (Exception e) {
+            // Deadline cancellations are reported by the caller, so they are not failures here
+            if (cancellation.isCancelled()) {
+                logger.fine("Speech generation cancelled for file: %s".formatted(fileName));
+                var cancelled = new CancellationException("Speech generation cancelled for file: " + fileName);
+                cancelled.initCause(e);
+                throw cancelled;
+            }
+            if (e instanceof IOException) {
+                logger.severe("Failed to generate speech for file: %s".formatted(fileName));
+                throw new RuntimeException("Failed to generate speech: " + e.getMessage(), e);
+            }
             logger.severe("Unexpected error generating speech for file: %s".formatted(fileName));
             throw new RuntimeException("Unexpected error generating speech: " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Streams audio into a temp file next to {@code outputPath} and moves it into
+     * place only if the call completes without being cancelled. The temp file is
+     * deleted on failure or cancellation, so the previous output is never replaced
+     * by a partial file.
+     */
+    static void streamToFile(Supplier<InputStream> audio, Path outputPath, Cancellation cancellation)
+            throws IOException {
+        if (cancellation.isCancelled()) {
+            throw new InterruptedIOException("Speech generation cancelled");
+        }
+
+        Path tempPath = Files.createTempFile(outputPath.getParent(), outputPath.getFileName() + ".", ".part");
+        try {
+            try (InputStream inputStream = audio.get();
+                 OutputStream outputStream = Files.newOutputStream(tempPath)) {
+                cancellation.attach(inputStream);
+
+                // Copy the stream to the file
+                copy(inputStream, outputStream, cancellation);
+            }
+
+            if (!cancellation.complete()) {
+                throw new InterruptedIOException("Speech generation cancelled");
+            }
+            moveIntoPlace(tempPath, outputPath);
+        } finally {
+            deleteQuietly(tempPath);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out, Cancellation cancellation) throws IOException {
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            if (cancellation.isCancelled() || Thread.currentThread().isInterrupted()) {
+                abort(in);
+                throw new InterruptedIOException("Speech generation cancelled");
+            }
+            out.write(buffer, 0, count);
+        }
+    }
+
+    private static void moveIntoPlace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warning("Could not delete temporary file: %s".formatted(path));
+        }
+    }
+
+    private static void abort(InputStream stream) {
+        if (stream == null) {
+            return;
+        }
+        try {
+            // Closing the HttpClient entity stream would read the rest of the response first;
+            // aborting closes the connection immediately and unblocks any pending read
+            if (stream instanceof EofSensorInputStream entityStream) {
+                entityStream.abort();
+            } else {
+                stream.close();
+            }
+        } catch (IOException e) {
+            // The reading thread sees the failure and cleans up
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.kousenit;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * End-to-end latency budget for one session, measured from the moment it is created.
+ */
+public class LatencyBudget {
+    private final Duration total;
+    private final LongSupplier nanoClock;
+    private final long startNanos;
+
+    public LatencyBudget(Duration total) {
+        this(total, System::nanoTime);
+    }
+
+    LatencyBudget(Duration total, LongSupplier nanoClock) {
+        if (total.isNegative() || total.isZero()) {
+            throw new IllegalArgumentException("Latency budget must be positive: " + total);
+        }
+        this.total = total;
+        this.nanoClock = nanoClock;
+        this.startNanos = nanoClock.getAsLong();
+    }
+
+    public Duration total() {
+        return total;
+    }
+
+    public Duration elapsed() {
+        return Duration.ofNanos(nanoClock.getAsLong() - startNanos);
+    }
+
+    public Duration remaining() {
+        Duration remaining = total.minus(elapsed());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public boolean isExpired() {
+        return remaining().isZero();
+    }
+}
@@ -0,0 +1,554 @@
+package com.kousenit;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.kousenit.LibreTranslateService.TranslateRequest;
+
+/**
+ * Hand-written JSON codec for the LibreTranslate {@code /translate} endpoint.
+ * <p>
+ * Requests are written as UTF-8 into pooled byte arrays that the body publisher
+ * hands to the HTTP client without copying, and responses are parsed
+ * incrementally from the response body stream, so the only strings created are
+ * the translated texts themselves. Both single ({@code "q": "..."})
+ * and batch ({@code "q": [...]}) payloads are supported.
+ * <p>
+ * Instances are thread-safe and meant to be shared.
+ */
+public class LibreTranslateCodec {
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_POOLED_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 32;
+
+    private static final byte[] TRANSLATED_TEXT = "translatedText".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ERROR = "error".getBytes(StandardCharsets.US_ASCII);
+    private static final int REPLACEMENT_CHARACTER = 0xFFFD;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final BlockingQueue<byte[]> pool = new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS);
+
+    /**
+     * Encoded request body backed by a pooled array. Close it once the request
+     * has been sent to hand the array back to the pool.
+     */
+    public final class Buffer implements AutoCloseable {
+        private byte[] bytes;
+        private int length;
+
+        private Buffer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public byte[] array() {
+            return bytes;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        /**
+         * Publishes the encoded bytes as a single {@link ByteBuffer} wrapping the
+         * pooled array. {@code BodyPublishers.ofByteArray} would copy them instead.
+         */
+        public HttpRequest.BodyPublisher publisher() {
+            byte[] body = bytes;
+            int bodyLength = length;
+            Flow.Publisher<ByteBuffer> publisher = subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+                private final AtomicBoolean done = new AtomicBoolean();
+
+                @Override
+                public void request(long n) {
+                    if (n <= 0) {
+                        if (done.compareAndSet(false, true)) {
+                            subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                        }
+                    } else if (done.compareAndSet(false, true)) {
+                        subscriber.onNext(ByteBuffer.wrap(body, 0, bodyLength).asReadOnlyBuffer());
+                        subscriber.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    done.set(true);
+                }
+            });
+            return HttpRequest.BodyPublishers.fromPublisher(publisher, bodyLength);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+
+        private void write(int b) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) b;
+        }
+
+        @Override
+        public void close() {
+            if (bytes != null) {
+                release(bytes);
+                bytes = null;
+            }
+        }
+    }
+
+    public Buffer encode(TranslateRequest request) {
+        Buffer buffer = new Buffer(acquire());
+        buffer.write('{');
+        boolean first = writeField(buffer, "source", request.source(), true);
+        first = writeField(buffer, "target", request.target(), first);
+        writeField(buffer, "q", request.q(), first);
+        buffer.write('}');
+        return buffer;
+    }
+
+    public Buffer encodeBatch(String source, String target, List<String> texts) {
+        Buffer buffer = new Buffer(acquire());
+        buffer.write('{');
+        boolean first = writeField(buffer, "source", source, true);
+        first = writeField(buffer, "target", target, first);
+        if (!first) buffer.write(',');
+        writeString(buffer, "q");
+        buffer.write(':');
+        buffer.write('[');
+        for (int i = 0; i < texts.size(); i++) {
+            if (i > 0) buffer.write(',');
+            writeString(buffer, texts.get(i));
+        }
+        buffer.write(']');
+        buffer.write('}');
+        return buffer;
+    }
+
+    /**
+     * Reads a single-text response and returns its {@code translatedText}.
+     * The stream is consumed but not closed.
+     */
+    public String decode(InputStream in) throws IOException {
+        try (Parser parser = new Parser(in)) {
+            return parser.readResponse(null);
+        }
+    }
+
+    /**
+     * Reads a batch response and returns the {@code translatedText} array in order.
+     * The stream is consumed but not closed.
+     */
+    public List<String> decodeBatch(InputStream in) throws IOException {
+        try (Parser parser = new Parser(in)) {
+            List<String> results = new ArrayList<>();
+            parser.readResponse(results);
+            return results;
+        }
+    }
+
+    private byte[] acquire() {
+        byte[] bytes = pool.poll();
+        return bytes != null ? bytes : new byte[BUFFER_SIZE];
+    }
+
+    private void release(byte[] bytes) {
+        if (bytes.length <= MAX_POOLED_BUFFER_SIZE) {
+            pool.offer(bytes);
+        }
+    }
+
+    private static boolean writeField(Buffer buffer, String name, String value, boolean first) {
+        // Match Gson's default of omitting null fields
+        if (value == null) {
+            return first;
+        }
+        if (!first) buffer.write(',');
+        writeString(buffer, name);
+        buffer.write(':');
+        writeString(buffer, value);
+        return false;
+    }
+
+    private static void writeString(Buffer buffer, String value) {
+        buffer.write('"');
+        int length = value.length();
+        // Presize for the common case; escapes still grow the array on demand
+        buffer.ensureCapacity(length * 3 + 2);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer.write('\\');
+                buffer.write(c);
+            } else if (c < 0x20) {
+                writeControlChar(buffer, c);
+            } else if (c < 0x80) {
+                buffer.write(c);
+            } else if (c < 0x800) {
+                buffer.write(0xC0 | (c >> 6));
+                buffer.write(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.write(0xF0 | (codePoint >> 18));
+                buffer.write(0x80 | ((codePoint >> 12) & 0x3F));
+                buffer.write(0x80 | ((codePoint >> 6) & 0x3F));
+                buffer.write(0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, same replacement String.getBytes(UTF_8) uses
+                buffer.write('?');
+            } else {
+                buffer.write(0xE0 | (c >> 12));
+                buffer.write(0x80 | ((c >> 6) & 0x3F));
+                buffer.write(0x80 | (c & 0x3F));
+            }
+        }
+        buffer.write('"');
+    }
+
+    private static void writeControlChar(Buffer buffer, char c) {
+        buffer.write('\\');
+        switch (c) {
+            case '\n' -> buffer.write('n');
+            case '\r' -> buffer.write('r');
+            case '\t' -> buffer.write('t');
+            case '\b' -> buffer.write('b');
+            case '\f' -> buffer.write('f');
+            default -> {
+                buffer.write('u');
+                buffer.write('0');
+                buffer.write('0');
+                buffer.write(HEX_DIGITS[c >> 4]);
+                buffer.write(HEX_DIGITS[c & 0xF]);
+            }
+        }
+    }
+
+    /**
+     * Pull parser over the raw UTF-8 bytes of a response body. String values are
+     * unescaped into a reusable byte scratch array and decoded exactly once.
+     */
+    private final class Parser implements AutoCloseable {
+        private final InputStream in;
+        private final byte[] input;
+        private byte[] scratch;
+        private int scratchLength;
+        private int pendingHighSurrogate = -1;
+        private int pos;
+        private int limit;
+
+        Parser(InputStream in) {
+            this.in = in;
+            this.input = acquire();
+            this.scratch = acquire();
+        }
+
+        String readResponse(List<String> batch) throws IOException {
+            String single = null;
+            boolean found = false;
+            String error = null;
+
+            expect('{');
+            if (peek() == '}') {
+                pos++;
+            } else {
+                do {
+                    readStringBytes();
+                    expect(':');
+                    if (scratchEquals(TRANSLATED_TEXT)) {
+                        found = true;
+                        if (batch == null) {
+                            single = readString();
+                        } else {
+                            readStringArray(batch);
+                        }
+                    } else if (scratchEquals(ERROR) && peek() == '"') {
+                        error = readString();
+                    } else {
+                        skipValue();
+                    }
+                } while (nextInObject());
+            }
+
+            if (error != null) {
+                throw new IOException("LibreTranslate error: " + error);
+            }
+            if (!found) {
+                throw new IOException("Missing translatedText in response");
+            }
+            return single;
+        }
+
+        private void readStringArray(List<String> out) throws IOException {
+            expect('[');
+            if (peek() == ']') {
+                pos++;
+                return;
+            }
+            do {
+                out.add(readString());
+            } while (nextInArray());
+        }
+
+        private String readString() throws IOException {
+            if (peek() == 'n') {
+                expectLiteral("null");
+                return null;
+            }
+            readStringBytes();
+            return new String(scratch, 0, scratchLength, StandardCharsets.UTF_8);
+        }
+
+        /** Unescapes the next JSON string into {@code scratch}. */
+        private void readStringBytes() throws IOException {
+            expect('"');
+            scratchLength = 0;
+            pendingHighSurrogate = -1;
+            while (true) {
+                int b = next();
+                if (b == '"') {
+                    flushPendingHighSurrogate();
+                    return;
+                }
+                if (b == '\\') {
+                    readEscape();
+                } else {
+                    flushPendingHighSurrogate();
+                    append(b);
+                }
+            }
+        }
+
+        private void readEscape() throws IOException {
+            int b = next();
+            if (b != 'u') {
+                flushPendingHighSurrogate();
+            }
+            switch (b) {
+                case '"', '\\', '/' -> append(b);
+                case 'n' -> append('\n');
+                case 'r' -> append('\r');
+                case 't' -> append('\t');
+                case 'b' -> append('\b');
+                case 'f' -> append('\f');
+                case 'u' -> readUnicodeEscape(readHex4());
+                default -> throw malformed("Invalid escape sequence");
+            }
+        }
+
+        // A high surrogate escape is held back until we know whether a low surrogate escape follows it
+        private void readUnicodeEscape(int c) {
+            if (pendingHighSurrogate >= 0 && Character.isLowSurrogate((char) c)) {
+                appendCodePoint(Character.toCodePoint((char) pendingHighSurrogate, (char) c));
+                pendingHighSurrogate = -1;
+                return;
+            }
+            flushPendingHighSurrogate();
+            if (Character.isHighSurrogate((char) c)) {
+                pendingHighSurrogate = c;
+            } else {
+                appendCodePoint(c);
+            }
+        }
+
+        private void flushPendingHighSurrogate() {
+            if (pendingHighSurrogate >= 0) {
+                appendCodePoint(REPLACEMENT_CHARACTER);
+                pendingHighSurrogate = -1;
+            }
+        }
+
+        private int readHex4() throws IOException {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                int digit = Character.digit(next(), 16);
+                if (digit < 0) {
+                    throw malformed("Invalid unicode escape");
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        private void appendCodePoint(int codePoint) {
+            if (codePoint <= 0xFFFF && Character.isSurrogate((char) codePoint)) {
+                codePoint = REPLACEMENT_CHARACTER;
+            }
+            if (codePoint < 0x80) {
+                append(codePoint);
+            } else if (codePoint < 0x800) {
+                append(0xC0 | (codePoint >> 6));
+                append(0x80 | (codePoint & 0x3F));
+            } else if (codePoint < 0x10000) {
+                append(0xE0 | (codePoint >> 12));
+                append(0x80 | ((codePoint >> 6) & 0x3F));
+                append(0x80 | (codePoint & 0x3F));
+            } else {
+                append(0xF0 | (codePoint >> 18));
+                append(0x80 | ((codePoint >> 12) & 0x3F));
+                append(0x80 | ((codePoint >> 6) & 0x3F));
+                append(0x80 | (codePoint & 0x3F));
+            }
+        }
+
+        private void append(int b) {
+            if (scratchLength == scratch.length) {
+                scratch = Arrays.copyOf(scratch, scratch.length * 2);
+            }
+            scratch[scratchLength++] = (byte) b;
+        }
+
+        private boolean scratchEquals(byte[] name) {
+            return Arrays.equals(scratch, 0, scratchLength, name, 0, name.length);
+        }
+
+        private void skipValue() throws IOException {
+            switch (peek()) {
+                case '"' -> skipString();
+                case '{' -> {
+                    pos++;
+                    if (peek() == '}') {
+                        pos++;
+                        return;
+                    }
+                    do {
+                        skipString();
+                        expect(':');
+                        skipValue();
+                    } while (nextInObject());
+                }
+                case '[' -> {
+                    pos++;
+                    if (peek() == ']') {
+                        pos++;
+                        return;
+                    }
+                    do {
+                        skipValue();
+                    } while (nextInArray());
+                }
+                case 't' -> expectLiteral("true");
+                case 'f' -> expectLiteral("false");
+                case 'n' -> expectLiteral("null");
+                default -> skipNumber();
+            }
+        }
+
+        private void skipString() throws IOException {
+            expect('"');
+            while (true) {
+                int b = next();
+                if (b == '"') {
+                    return;
+                }
+                if (b == '\\') {
+                    next();
+                }
+            }
+        }
+
+        private void skipNumber() throws IOException {
+            int start = pos;
+            while (fill()) {
+                int b = input[pos];
+                if ((b >= '0' && b <= '9') || b == '-' || b == '+' || b == '.' || b == 'e' || b == 'E') {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos == start) {
+                throw malformed("Unexpected character");
+            }
+        }
+
+        private void expectLiteral(String literal) throws IOException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (next() != literal.charAt(i)) {
+                    throw malformed("Expected " + literal);
+                }
+            }
+        }
+
+        private boolean nextInObject() throws IOException {
+            return separator('}');
+        }
+
+        private boolean nextInArray() throws IOException {
+            return separator(']');
+        }
+
+        private boolean separator(char close) throws IOException {
+            int b = peek();
+            pos++;
+            if (b == ',') {
+                return true;
+            }
+            if (b == close) {
+                return false;
+            }
+            throw malformed("Expected ',' or '" + close + "'");
+        }
+
+        private void expect(char expected) throws IOException {
+            if (peek() != expected) {
+                throw malformed("Expected '" + expected + "'");
+            }
+            pos++;
+        }
+
+        /** Next non-whitespace byte, without consuming it. */
+        private int peek() throws IOException {
+            while (fill()) {
+                int b = input[pos];
+                if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                    pos++;
+                } else {
+                    return b;
+                }
+            }
+            throw malformed("Unexpected end of input");
+        }
+
+        private int next() throws IOException {
+            if (!fill()) {
+                throw malformed("Unexpected end of input");
+            }
+            return input[pos++] & 0xFF;
+        }
+
+        private boolean fill() throws IOException {
+            if (pos < limit) {
+                return true;
+            }
+            int read = in.read(input, 0, input.length);
+            while (read == 0) {
+                read = in.read(input, 0, input.length);
+            }
+            pos = 0;
+            limit = Math.max(read, 0);
+            return read > 0;
+        }
+
+        private IOException malformed(String message) {
+            return new IOException("Malformed JSON: " + message);
+        }
+
+        @Override
+        public void close() {
+            release(input);
+            release(scratch);
+        }
+    }
+}
@@ -4,12 +4,14 @@ import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.stream.Collectors;
 
 public class LibreTranslateService {
@@ -19,6 +21,7 @@ public class LibreTranslateService {
     private final Set<String> supportedTargetCodes;
 
     private final Gson gson = new Gson();
+    private final LibreTranslateCodec codec = new LibreTranslateCodec();
 
     public record TranslateRequest(String source, String target, String q) {}
     public record TranslateResponse(String translatedText) {}
@@ -49,31 +52,45 @@ public class LibreTranslateService {
                 .collect(Collectors.toUnmodifiableSet());
     }
 
+    /**
+     * Interrupting the calling thread cancels the request and surfaces as a
+     * {@link CancellationException}, not as a server failure.
+     */
     public String translate(TranslateRequest request) {
         validateTranslateRequest(request);
 
-        String requestJson = gson.toJson(request);
-        try (var httpClient = HttpClient.newHttpClient()) {
-            var httpRequest = HttpRequest.newBuilder()
-                    .uri(URI.create(getTranslateUrl()))
-                    .header("Content-Type", "application/json")
-                    .header("Accept", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestJson))
-                    .build();
-            var response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() != 200) {
-                throw new RuntimeException("Translation failed with HTTP response code: " + response.statusCode());
-            }
-
-            return parseTranslationResponse(response.body());
-        } catch (IOException | InterruptedException e) {
+        // Resources close in reverse order: the client waits for the exchange to finish
+        // before the pooled request body goes back to the codec
+        try (var requestBody = codec.encode(request);
+             var httpClient = HttpClient.newHttpClient()) {
+            return parseTranslationResponse(send(httpClient, requestBody));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Translation cancelled");
+        } catch (IOException e) {
             String msg = "Error translating text. Is the local server running?";
             System.err.println(msg);
             throw new RuntimeException(msg, e);
         }
     }
 
+    private HttpResponse<InputStream> send(HttpClient httpClient, LibreTranslateCodec.Buffer requestBody)
+            throws IOException, InterruptedException {
+        var httpRequest = HttpRequest.newBuilder()
+                .uri(URI.create(getTranslateUrl()))
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .POST(requestBody.publisher())
+                .build();
+        var response = httpClient.send(httpRequest, HttpResponse.BodyHandlers.ofInputStream());
+
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new RuntimeException("Translation failed with HTTP response code: " + response.statusCode());
+        }
+        return response;
+    }
+
     private void validateTranslateRequest(TranslateRequest request) {
         if (request.q() == null || request.q().isBlank()) {
             throw new IllegalArgumentException("Translation text cannot be empty");
@@ -86,13 +103,13 @@ public class LibreTranslateService {
         }
     }
 
-    private String parseTranslationResponse(String responseBody) {
-        try {
-            var response = gson.fromJson(responseBody, TranslateResponse.class);
-            if (response == null || response.translatedText() == null) {
+    private String parseTranslationResponse(HttpResponse<InputStream> response) {
+        try (InputStream body = response.body()) {
+            String translatedText = codec.decode(body);
+            if (translatedText == null) {
                 throw new RuntimeException("Failed to parse translation response: null response");
             }
-            return response.translatedText();
+            return translatedText;
         } catch (Exception e) {
             throw new RuntimeException("Failed to parse translation response: " + e.getMessage(), e);
         }
@@ -0,0 +1,106 @@
+package com.kousenit;
+
+import net.andrewcpu.elevenlabs.enums.ElevenLabsVoiceModel;
+import net.andrewcpu.elevenlabs.enums.StreamLatencyOptimization;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.kousenit.DeadlineController.Mode;
+import static com.kousenit.DeadlineController.Stage;
+import static com.kousenit.ElevenLabsService.SpeechSettings;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineControllerTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private DeadlineController controller;
+
+    @BeforeEach
+    void setUp() {
+        controller = new DeadlineController(new LatencyBudget(Duration.ofSeconds(10), nanos::get));
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    @DisplayName("Should keep full quality when stages stay on plan")
+    void fullQualityOnPlan() {
+        advance(Duration.ofSeconds(2));
+
+        assertThat(controller.checkpoint(Stage.TRANSCRIPTION)).isEqualTo(Mode.FULL_QUALITY);
+        assertThat(controller.speechSettings("de")).isEqualTo(SpeechSettings.FULL_QUALITY);
+        assertThat(controller.degradations()).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Should switch to faster speech settings when a stage runs long")
+    void fastModeWhenBehind() {
+        // Transcription is planned for 3s of the 10s budget
+        advance(Duration.ofSeconds(4));
+
+        assertThat(controller.checkpoint(Stage.TRANSCRIPTION)).isEqualTo(Mode.FAST);
+        assertThat(controller.speechSettings("en").model()).isEqualTo(ElevenLabsVoiceModel.ELEVEN_TURBO_V2);
+        assertThat(controller.speechSettings("de").model()).isEqualTo(ElevenLabsVoiceModel.ELEVEN_MULTILINGUAL_V2);
+        assertThat(controller.speechSettings("de").latencyOptimization())
+                .isEqualTo(StreamLatencyOptimization.STRONG);
+        assertThat(controller.degradations()).singleElement()
+                .satisfies(d -> assertThat(d.stage()).isEqualTo(Stage.TRANSCRIPTION));
+    }
+
+    @Test
+    @DisplayName("Should never upgrade the mode once degraded")
+    void neverUpgrades() {
+        advance(Duration.ofSeconds(5));
+        controller.checkpoint(Stage.TRANSCRIPTION);
+
+        // Translation finishes early enough that the session is back on plan
+        assertThat(controller.checkpoint(Stage.TRANSLATION)).isEqualTo(Mode.FASTEST);
+        assertThat(controller.degradations()).hasSize(1);
+    }
+
+    @Test
+    @DisplayName("Should skip low-priority languages only once in the fastest mode")
+    void skipLowPriorityLanguages() {
+        var languages = List.of("en", "hi", "de", "fr");
+        assertThat(controller.selectLanguages(Stage.TRANSLATION, languages)).isEqualTo(languages);
+
+        advance(Duration.ofSeconds(5));
+        controller.checkpoint(Stage.TRANSCRIPTION);
+
+        List<String> selected = controller.selectLanguages(Stage.TRANSLATION, languages);
+        assertThat(selected).containsExactly("en", "hi");
+        assertThat(controller.selectLanguages(Stage.SPEECH, selected)).containsExactly("en", "hi");
+    }
+
+    @Test
+    @DisplayName("Should reserve time for later stages")
+    void timeoutReservesLaterStages() {
+        // Translation and speech need half of their planned 7s in the fastest mode
+        assertThat(controller.timeoutFor(Stage.TRANSCRIPTION)).isEqualTo(Duration.ofMillis(6500));
+        assertThat(controller.timeoutFor(Stage.SPEECH)).isEqualTo(Duration.ofSeconds(10));
+
+        advance(Duration.ofSeconds(9));
+        assertThat(controller.timeoutFor(Stage.TRANSLATION)).isZero();
+        assertThat(controller.timeoutFor(Stage.SPEECH)).isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    @DisplayName("Should report cancelled work")
+    void reportCancellations() {
+        advance(Duration.ofSeconds(11));
+        controller.reportCancelled(Stage.SPEECH, "speech generation for fr");
+
+        assertThat(controller.budget().isExpired()).isTrue();
+        assertThat(controller.degradations()).singleElement()
+                .satisfies(d -> {
+                    assertThat(d.decision()).contains("speech generation for fr");
+                    assertThat(d.remaining()).isZero();
+                });
+    }
+}
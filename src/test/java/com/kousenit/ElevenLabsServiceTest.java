@@ -4,11 +4,16 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 class ElevenLabsServiceTest {
     private ElevenLabsService service;
@@ -40,4 +45,74 @@ class ElevenLabsServiceTest {
         // Cleanup
         Files.deleteIfExists(outputFile);
     }
+
+    @Test
+    @DisplayName("Should stay cancelled once cancelled")
+    void cancellationIsSticky() {
+        var cancellation = new ElevenLabsService.Cancellation();
+        assertThat(cancellation.isCancelled()).isFalse();
+
+        assertThat(cancellation.cancel()).isTrue();
+        assertThat(cancellation.cancel()).isTrue();
+        assertThat(cancellation.isCancelled()).isTrue();
+        assertThat(cancellation.complete()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should not cancel a call that already completed")
+    void completedCallCannotBeCancelled() {
+        var cancellation = new ElevenLabsService.Cancellation();
+
+        assertThat(cancellation.complete()).isTrue();
+        assertThat(cancellation.cancel()).isFalse();
+        assertThat(cancellation.isCancelled()).isFalse();
+    }
+
+    @Test
+    @DisplayName("Should move streamed audio into place on success")
+    void streamToFileWritesOutput(@TempDir Path dir) throws Exception {
+        Path output = dir.resolve("speech.mp3");
+        Files.writeString(output, "old audio");
+
+        ElevenLabsService.streamToFile(() -> new ByteArrayInputStream("new audio".getBytes()),
+                output, new ElevenLabsService.Cancellation());
+
+        assertThat(output).hasContent("new audio");
+        assertThat(dir).isDirectoryNotContaining("glob:**.part");
+    }
+
+    @Test
+    @DisplayName("Should never write the output file of a cancelled call")
+    void cancelledCallKeepsPreviousOutput(@TempDir Path dir) throws Exception {
+        Path output = dir.resolve("speech.mp3");
+        Files.writeString(output, "old audio");
+        var cancellation = new ElevenLabsService.Cancellation();
+
+        // Cancel while the audio is streaming, as the deadline controller would
+        InputStream audio = new ByteArrayInputStream("new audio".getBytes()) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                cancellation.cancel();
+                return super.read(b, off, len);
+            }
+        };
+
+        assertThatThrownBy(() -> ElevenLabsService.streamToFile(() -> audio, output, cancellation))
+                .isInstanceOf(InterruptedIOException.class);
+        assertThat(output).hasContent("old audio");
+        assertThat(dir).isDirectoryNotContaining("glob:**.part");
+    }
+
+    @Test
+    @DisplayName("Should not start streaming once cancelled")
+    void cancelledBeforeStart(@TempDir Path dir) {
+        Path output = dir.resolve("speech.mp3");
+        var cancellation = new ElevenLabsService.Cancellation();
+        cancellation.cancel();
+
+        assertThatThrownBy(() -> ElevenLabsService.streamToFile(
+                () -> { throw new AssertionError("Audio should not be requested"); }, output, cancellation))
+                .isInstanceOf(InterruptedIOException.class);
+        assertThat(output).doesNotExist();
+    }
 }
\ No newline at end of file
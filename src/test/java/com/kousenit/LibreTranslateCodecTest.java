@@ -0,0 +1,148 @@
+package com.kousenit;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static com.kousenit.LibreTranslateService.TranslateRequest;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LibreTranslateCodecTest {
+    private final LibreTranslateCodec codec = new LibreTranslateCodec();
+    private final Gson gson = new Gson();
+
+    private static InputStream json(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Should encode a request that Gson reads back unchanged")
+    void encodeMatchesGson() {
+        var request = new TranslateRequest("en", "de",
+                "Quotes \" and \\ slashes\nnew line\ttab \u0001 Grüße € 😀");
+
+        try (var buffer = codec.encode(request)) {
+            String encoded = new String(buffer.array(), 0, buffer.length(), StandardCharsets.UTF_8);
+            assertThat(gson.fromJson(encoded, TranslateRequest.class)).isEqualTo(request);
+        }
+    }
+
+    @Test
+    @DisplayName("Should encode batch requests with an array of texts")
+    void encodeBatch() {
+        try (var buffer = codec.encodeBatch("en", "fr", List.of("Hello", "Good morning"))) {
+            String encoded = new String(buffer.array(), 0, buffer.length(), StandardCharsets.UTF_8);
+            JsonObject object = gson.fromJson(encoded, JsonObject.class);
+            assertThat(object.get("source").getAsString()).isEqualTo("en");
+            assertThat(object.get("target").getAsString()).isEqualTo("fr");
+            assertThat(object.getAsJsonArray("q")).hasSize(2);
+            assertThat(object.getAsJsonArray("q").get(1).getAsString()).isEqualTo("Good morning");
+        }
+    }
+
+    @Test
+    @DisplayName("Should decode translated text and skip unknown fields")
+    void decodeSkipsUnknownFields() throws IOException {
+        String body = """
+                {"detectedLanguage": {"confidence": 90.0, "language": "en"},
+                 "alternatives": ["Hallo", null, true, -1.5e3],
+                 "translatedText": "Hallo \\"Welt\\" \\u00fc\\ud83d\\ude00 Grüße"}
+                """;
+
+        assertThat(codec.decode(json(body))).isEqualTo("Hallo \"Welt\" ü😀 Grüße");
+    }
+
+    @Test
+    @DisplayName("Should replace a lone high surrogate followed by another escape")
+    void decodeLoneHighSurrogate() throws IOException {
+        String body = """
+                {"translatedText": "a\\uD83D\\nb\\uD83D\\uD83D\\uDE00c\\uDE00"}""";
+
+        assertThat(codec.decode(json(body))).isEqualTo("a\uFFFD\nb\uFFFD😀c\uFFFD");
+    }
+
+    @Test
+    @DisplayName("Should publish the encoded bytes with their content length")
+    void publisherMatchesEncodedBytes() {
+        try (var buffer = codec.encode(new TranslateRequest("en", "de", "Grüße"))) {
+            var publisher = buffer.publisher();
+            assertThat(publisher.contentLength()).isEqualTo(buffer.length());
+
+            var received = new ByteArrayOutputStream();
+            publisher.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(ByteBuffer item) {
+                    byte[] bytes = new byte[item.remaining()];
+                    item.get(bytes);
+                    received.writeBytes(bytes);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    throw new AssertionError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                }
+            });
+
+            assertThat(received.toByteArray())
+                    .isEqualTo(Arrays.copyOf(buffer.array(), buffer.length()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should decode text larger than the read buffer")
+    void decodeLargeText() throws IOException {
+        String text = "Grüße ".repeat(10_000);
+        String body = gson.toJson(new LibreTranslateService.TranslateResponse(text));
+
+        assertThat(codec.decode(json(body))).isEqualTo(text);
+    }
+
+    @Test
+    @DisplayName("Should decode batch responses in order")
+    void decodeBatch() throws IOException {
+        String body = """
+                {"translatedText": ["Bonjour", "Bon matin"]}""";
+
+        assertThat(codec.decodeBatch(json(body))).containsExactly("Bonjour", "Bon matin");
+    }
+
+    @Test
+    @DisplayName("Should surface server error messages")
+    void decodeError() {
+        assertThatThrownBy(() -> codec.decode(json("{\"error\": \"Invalid request\"}")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Invalid request");
+    }
+
+    @Test
+    @DisplayName("Should reject malformed JSON")
+    void decodeMalformed() {
+        assertThatThrownBy(() -> codec.decode(json("{\"translatedText\": \"unterminated")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Malformed JSON");
+        assertThatThrownBy(() -> codec.decode(json("{\"other\": 1}")))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Missing translatedText");
+    }
+}